@@ -1,11 +1,23 @@
 import java.util.*;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 public class NsqPlus1Sieve {
 
     // Cap for small primes used in pre-sieving (keeps memory/time bounded)
     static final int P_MAX = 1_000_000;
 
+    // Snapshot of sqrt(-1) mod p tables, reused across runs (override with -Dnsq.tables=...)
+    static final Path TABLES_FILE = Paths.get(System.getProperty("nsq.tables", "nsq_roots.bin"));
+
     // Standard Sieve of Eratosthenes for primes up to limit
     static List<Integer> simpleSieve(int limit) {
         boolean[] isComposite = new boolean[limit + 1];
@@ -24,53 +36,349 @@ public class NsqPlus1Sieve {
     }
 
     public static List<Long> findPrimesNsqPlus1(long x) {
-        long nMax = (long) Math.floor(Math.sqrt(x - 1));
+        List<Long> result = new ArrayList<>();
+        long nMax = (long) Math.floor(Math.sqrt(Math.max(0L, x - 1)));
+        if (nMax < 2)
+            return result;
+
+        // Wheel primes divide n^2+1 on every excluded class, except for n^2+1 == p
+        // itself (n=2 gives 5, n=4 gives 17); add those back explicitly
+        for (int p : Wheel.PRIMES) {
+            long n = (long) Math.sqrt(p - 1);
+            if (n * n + 1 == p && n <= nMax)
+                result.add((long) p);
+        }
+
+        long base = segmentBase(2);
+        BitSet composite = sieveSegment(2, nMax);
+        int size = (int) (WHEEL.toIndex(nMax, true) + 1 - base);
+        for (int i = composite.nextClearBit(0); i < size; i = composite.nextClearBit(i + 1)) {
+            long n = WHEEL.toN(base + i);
+            long val = n * n + 1;
+            if (isPrime64(val))
+                result.add(val);
+        }
+        return result;
+    }
 
-        // Only even n: halve storage
-        int size = (int) ((nMax / 2) + 1);
-        BitSet composite = new BitSet(size); // composite.get(i) => n=2*i is composite
-        // Use only small primes up to P_MAX for pre-sieving
-        List<Integer> primes = simpleSieve(Math.min(P_MAX, (int) Math.sqrt(Math.max(0L, x)) + 1));
+    // Count of odd primes n^2+1 <= x, without building the list
+    public static long countPrimesNsqPlus1(long x) {
+        return countPrimesNsqPlus1(2, (long) Math.floor(Math.sqrt(Math.max(0L, x - 1))));
+    }
 
-        for (int p : primes) {
-            if (p == 2)
-                continue; // n^2+1 odd for even n, skip p=2
+    // Count of primes n^2+1 with n even and nLo <= n <= nMax, so that a sweep can
+    // sieve only the n range it has not seen yet
+    static long countPrimesNsqPlus1(long nLo, long nMax) {
+        nLo = Math.max(nLo, 2);
+        if (nMax < nLo)
+            return 0L;
 
-            // Find solutions to n^2 ≡ -1 (mod p)
-            int r = modSqrtMinusOne(p);
-            if (r == -1)
-                continue; // no solution
+        long count = 0;
+        for (int p : Wheel.PRIMES) {
+            long n = (long) Math.sqrt(p - 1);
+            if (n * n + 1 == p && n >= nLo && n <= nMax)
+                count++;
+        }
 
-            // Only even n ⇒ we mark r and p-r if even
+        long base = segmentBase(nLo);
+        BitSet composite = sieveSegment(nLo, nMax);
+        int size = (int) (WHEEL.toIndex(nMax, true) + 1 - base);
+        for (int i = composite.nextClearBit(0); i < size; i = composite.nextClearBit(i + 1)) {
+            long n = WHEEL.toN(base + i);
+            if (isPrime64(n * n + 1))
+                count++;
+        }
+        return count;
+    }
+
+    // Wheel index of the first admissible n >= nLo
+    private static long segmentBase(long nLo) {
+        return WHEEL.toIndex(nLo - 1, true) + 1;
+    }
+
+    // Pre-sieves the admissible n in [nLo, nMax], nLo >= 1. Bit i stands for
+    // n = WHEEL.toN(segmentBase(nLo) + i) and is set if a table prime divides n^2+1.
+    private static BitSet sieveSegment(long nLo, long nMax) {
+        long base = segmentBase(nLo);
+        long kLo = nLo / WHEEL.modulus;
+        long kMax = nMax / WHEEL.modulus;
+        long span = nMax - nLo + 1;
+        BitSet composite = new BitSet((int) Math.max(0L, WHEEL.toIndex(nMax, true) + 1 - base));
+        // Use only small primes up to P_MAX for pre-sieving; the table holds exactly
+        // the p ≡ 1 (mod 4) with their solution r of n^2 ≡ -1 (mod p)
+        int bound = (int) Math.min(P_MAX, nMax + 1);
+        RootTable tables = rootTable(bound);
+
+        for (int i = 0; i < tables.count && tables.prime(i) <= bound; i++) {
+            int p = tables.prime(i);
+            if (WHEEL.covers(p))
+                continue; // wheel primes never hit a stored class
+            int r = tables.root(i);
+
+            // Per-class stepping costs one offset per class plus (kMax-kLo)/p hits
+            // each; plain n-stepping costs span/p probes. Pick whichever scans less.
+            boolean perClass = (long) WHEEL.classCount() * (kMax - kLo + p) < span;
+            long invM = perClass ? modPow(WHEEL.modulus, p - 2, p) : 0;
             for (int root : new int[] { r, p - r }) {
-                if (root < 0 || root >= p)
-                    continue;
-                // Find the first n >= 2 that is congruent to root (mod p) and even
-                long first = root;
-                if (first < 2)
-                    first += ((2 - first + p - 1) / p) * p;
-                // Ensure even
-                if ((first & 1L) != 0)
-                    first += p;
-
-                // Map n to index = n/2
-                for (long n = first; n <= nMax; n += p) {
-                    composite.set((int) (n / 2));
+                // Only the very first hit n = root can have n^2+1 == p; step past it
+                long prime = (long) root * root + 1 == p ? root : -1;
+                if (perClass) {
+                    for (int c = 0; c < WHEEL.classCount(); c++) {
+                        long k = WHEEL.firstHit(c, p, root, invM);
+                        if (k * WHEEL.modulus + WHEEL.residues[c] == prime)
+                            k += p;
+                        if (k < kLo)
+                            k += (kLo - k + p - 1) / p * p;
+                        for (; k <= kMax; k += p) {
+                            long n = k * WHEEL.modulus + WHEEL.residues[c];
+                            if (n < nLo)
+                                continue;
+                            if (n > nMax)
+                                break;
+                            composite.set((int) (k * WHEEL.classCount() + c - base));
+                        }
+                    }
+                } else {
+                    long n = root == prime ? root + p : root;
+                    if (n < nLo)
+                        n += (nLo - n + p - 1) / p * p;
+                    for (; n <= nMax; n += p) {
+                        long idx = WHEEL.toIndex(n, false);
+                        if (idx >= 0)
+                            composite.set((int) (idx - base));
+                    }
                 }
             }
         }
+        return composite;
+    }
 
-        List<Long> result = new ArrayList<>();
-        // n=0 gives 1 (not prime), n=2 gives 5 (prime)
-        for (int i = 1; i < size; i++) {
-            if (!composite.get(i)) {
-                long n = 2L * i;
-                long val = n * n + 1;
-                if (isPrime64(val))
-                    result.add(val);
+    static final Wheel WHEEL = new Wheel(Wheel.PRIMES);
+
+    // Wheel over even n modulo 2 * product of small primes p ≡ 1 (mod 4). Classes
+    // with n ≡ ±sqrt(-1) (mod p) are dropped, so only a fraction prod (1 - 2/p) of
+    // the even n is stored: 3/5 * 11/13 * 15/17 * 27/29 ≈ 0.417 for the default set.
+    static final class Wheel {
+        static final int[] PRIMES = { 5, 13, 17, 29 };
+
+        final int modulus;
+        final int[] residues; // admissible n mod modulus, ascending
+        final int[] classOf; // n mod modulus -> class index, or -1 if excluded
+        private final int[] primes;
+
+        Wheel(int[] primes) {
+            this.primes = primes.clone();
+            int m = 2;
+            for (int p : primes)
+                m *= p;
+            modulus = m;
+            classOf = new int[m];
+            List<Integer> admissible = new ArrayList<>();
+            for (int n = 0; n < m; n += 2) {
+                boolean keep = true;
+                for (int p : primes) {
+                    if (((long) n * n + 1) % p == 0) {
+                        keep = false;
+                        break;
+                    }
+                }
+                if (keep)
+                    admissible.add(n);
+            }
+            Arrays.fill(classOf, -1);
+            residues = new int[admissible.size()];
+            for (int c = 0; c < residues.length; c++) {
+                residues[c] = admissible.get(c);
+                classOf[residues[c]] = c;
             }
         }
-        return result;
+
+        int classCount() {
+            return residues.length;
+        }
+
+        boolean covers(int p) {
+            for (int q : primes)
+                if (q == p)
+                    return true;
+            return false;
+        }
+
+        long toN(long index) {
+            return (index / residues.length) * modulus + residues[(int) (index % residues.length)];
+        }
+
+        // Index of n, or -1 if n is not in an admissible class. With floor set,
+        // returns the index of the largest admissible n' <= n instead.
+        long toIndex(long n, boolean floor) {
+            long k = n / modulus;
+            int r = (int) (n % modulus);
+            int c = classOf[r];
+            if (c >= 0)
+                return k * residues.length + c;
+            if (!floor)
+                return -1;
+            while (r > 0 && classOf[r] < 0)
+                r--;
+            c = classOf[r];
+            return c >= 0 ? k * residues.length + c : k * residues.length - 1;
+        }
+
+        // Smallest k >= 0 with k * modulus + residues[c] ≡ root (mod p), given
+        // invM = modulus^-1 mod p
+        long firstHit(int c, int p, int root, long invM) {
+            long diff = ((root - residues[c]) % p + p) % p;
+            return diff * invM % p;
+        }
+    }
+
+    private static RootTable cachedTables;
+    private static boolean snapshotReadOnly; // extension failed, keep the mapped prefix
+    private static boolean snapshotUnavailable; // open failed, compute in memory
+
+    // Tables covering at least bound: in-process cache first, then the snapshot
+    // file (extended if too small), else computed in memory. Snapshot failures are
+    // reported once and not retried for the rest of the process.
+    static synchronized RootTable rootTable(int bound) {
+        if (cachedTables != null && (cachedTables.bound >= bound || snapshotReadOnly))
+            return cachedTables;
+        if (snapshotUnavailable) {
+            cachedTables = RootTable.compute(bound);
+            return cachedTables;
+        }
+        try {
+            cachedTables = RootTable.open(TABLES_FILE, bound);
+            snapshotReadOnly = cachedTables.bound < bound;
+        } catch (IOException e) {
+            System.err.println("Tables snapshot unavailable (" + e.getMessage() + "), computing in memory.");
+            snapshotUnavailable = true;
+            cachedTables = RootTable.compute(bound);
+        }
+        return cachedTables;
+    }
+
+    // Primes p ≡ 1 (mod 4) up to bound, each with a root r of r^2 ≡ -1 (mod p),
+    // sorted by p. On disk: int magic, version, bound, count, then count (p, r)
+    // pairs, big-endian. Records are appended before the header is rewritten, so
+    // an interrupted extension leaves the previous snapshot intact.
+    static final class RootTable {
+        static final int MAGIC = 0x4E535152; // "NSQR"
+        static final int VERSION = 1;
+        static final int HEADER_BYTES = 16;
+
+        final int bound;
+        final int count;
+        private final IntBuffer records;
+
+        private RootTable(int bound, int count, IntBuffer records) {
+            this.bound = bound;
+            this.count = count;
+            this.records = records;
+        }
+
+        int prime(int i) {
+            return records.get(2 * i);
+        }
+
+        int root(int i) {
+            return records.get(2 * i + 1);
+        }
+
+        static RootTable compute(int bound) {
+            ByteBuffer buf = encode(0, bound);
+            return new RootTable(bound, buf.remaining() / 8, buf.asIntBuffer());
+        }
+
+        // Maps the snapshot read-only. Only when it does not cover bound is it
+        // reopened for writing and extended in place under a lock; if that fails,
+        // the existing prefix is used (the sieve stays exact, it just pre-sieves
+        // with fewer primes).
+        @SuppressWarnings("try") // lock is held for its scope only
+        static RootTable open(Path file, int bound) throws IOException {
+            int[] stored = null;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                stored = readHeader(ch, file);
+                if (bound <= stored[0])
+                    return map(ch, stored[0], stored[1]);
+            } catch (NoSuchFileException e) {
+                // first run, create it below
+            }
+
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                try (FileLock lock = ch.lock()) {
+                    // Another process may have extended or replaced it meanwhile
+                    int[] current = readHeader(ch, file);
+                    int oldBound = current[0];
+                    int oldCount = current[1];
+                    if (bound <= oldBound)
+                        return map(ch, oldBound, oldCount);
+
+                    ByteBuffer added = encode(oldBound, bound);
+                    int newCount = oldCount + added.remaining() / 8;
+                    long pos = HEADER_BYTES + 8L * oldCount;
+                    while (added.hasRemaining())
+                        pos += ch.write(added, pos);
+                    ch.force(false);
+
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                    header.putInt(MAGIC).putInt(VERSION).putInt(bound).putInt(newCount).flip();
+                    ch.write(header, 0);
+                    ch.force(false);
+                    return map(ch, bound, newCount);
+                }
+            } catch (IOException e) {
+                if (stored == null || stored[0] == 0)
+                    throw e;
+                System.err.println("Tables snapshot not extendable (" + e.getMessage() + "), using bound "
+                        + stored[0] + ".");
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                    return map(ch, stored[0], stored[1]);
+                }
+            }
+        }
+
+        // { bound, count } of a valid snapshot, or { 0, 0 } if it is empty, of an
+        // older version or truncated and can be rebuilt in place. Anything else is
+        // not ours and is left alone.
+        private static int[] readHeader(FileChannel ch, Path file) throws IOException {
+            long size = ch.size();
+            if (size == 0)
+                return new int[] { 0, 0 };
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && ch.read(header, header.position()) > 0)
+                ;
+            header.flip();
+            if (header.remaining() < 4 || header.getInt() != MAGIC)
+                throw new IOException(file + " is not a tables snapshot");
+            if (header.remaining() < 12 || header.getInt() != VERSION)
+                return new int[] { 0, 0 };
+            int bound = header.getInt();
+            int count = header.getInt();
+            if (size < HEADER_BYTES + 8L * count)
+                return new int[] { 0, 0 };
+            return new int[] { bound, count };
+        }
+
+        private static RootTable map(FileChannel ch, int bound, int count) throws IOException {
+            IntBuffer records = ch.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, 8L * count).asIntBuffer();
+            return new RootTable(bound, count, records);
+        }
+
+        // (p, r) records for primes p ≡ 1 (mod 4) with from < p <= to
+        private static ByteBuffer encode(int from, int to) {
+            List<Integer> primes = simpleSieve(to);
+            ByteBuffer buf = ByteBuffer.allocate(8 * primes.size());
+            for (int p : primes) {
+                if (p <= from)
+                    continue;
+                int r = modSqrtMinusOne(p);
+                if (r != -1)
+                    buf.putInt(p).putInt(r);
+            }
+            buf.flip();
+            return buf;
+        }
     }
 
     // Returns sqrt(-1) mod p if exists, else -1
@@ -1,6 +1,7 @@
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.io.IOException;
 import java.math.BigInteger;
 import javax.swing.*;
 import java.awt.*;
@@ -193,7 +194,18 @@ public class NumberTheoryJava {
         return cumulativeCount;
     }
 
-    public static void main(String[] args) {
+    // BH heuristic: count(x) ~ K * sqrt(x) / log x => ratio ~ sqrt(r) *
+    // log(x_prev)/log(x)
+    static double expectedRatio(double prevX, double x) {
+        return Math.sqrt(x / prevX) * (Math.log(prevX) / Math.log(x));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            // Non-interactive sweep, see SweepRunner
+            SweepRunner.main(args);
+            return;
+        }
         try (Scanner scanner = new Scanner(System.in)) {
             // long x = (long) Math.pow(10, 16);
             System.out.println("'Starting Value' 'Common Ratio' 'Detailed List': "); // 1 = detailed list, 0 =
@@ -235,11 +247,9 @@ public class NumberTheoryJava {
                         }
 
                         // Plot ratio(actual) and ratio(expected BH)
-                        if (ratioPlot != null && prevCount > 0 && prevX > 0) {
+                        if (ratioPlot != null && prevCount > 0 && prevX > 1) { // log(1) = 0
                             double actual = (double) count / (double) prevCount;
-                            // BH heuristic: count(x) ~ K * sqrt(x) / log x => ratio ~ sqrt(r) *
-                            // log(x_prev)/log(x)
-                            double expected = Math.sqrt(x / prevX) * (Math.log(prevX) / Math.log(x));
+                            double expected = expectedRatio(prevX, x);
                             ratioPlot.addPoint(order, actual, expected);
                         }
 
@@ -0,0 +1,178 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Non-interactive sweep over x = start * ratio^k up to a final bound. Results go
+// to a preallocated memory-mapped log and to buffered stdout; Swing is only
+// touched when --plot is given.
+//
+//   java SweepRunner --start 1 --ratio 2 --until 1e14 [--engine incremental|wheel]
+//                    [--log sweep.bin] [--plot]
+public class SweepRunner {
+
+    static final String USAGE = "Usage: java SweepRunner --start <x> --ratio <r> --until <bound>"
+            + " [--engine incremental|wheel] [--log <file>] [--plot]";
+
+    public static void main(String[] args) throws IOException {
+        double start = 1;
+        double ratio = 2;
+        double until = -1;
+        String engine = "incremental";
+        Path logFile = Paths.get("sweep.bin");
+        boolean plot = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--start":
+                        start = Double.parseDouble(args[++i]);
+                        break;
+                    case "--ratio":
+                        ratio = Double.parseDouble(args[++i]);
+                        break;
+                    case "--until":
+                        until = Double.parseDouble(args[++i]);
+                        break;
+                    case "--engine":
+                        engine = args[++i];
+                        break;
+                    case "--log":
+                        logFile = Paths.get(args[++i]);
+                        break;
+                    case "--plot":
+                        plot = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+            if (!(start >= 1) || !(ratio > 1) || !(until >= start))
+                throw new IllegalArgumentException("need start >= 1, ratio > 1 and until >= start");
+            if (!engine.equals("incremental") && !engine.equals("wheel"))
+                throw new IllegalArgumentException("unknown engine " + engine);
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : "missing option value");
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        // Orders 1..orders satisfy start * ratio^order <= until
+        int orders = 0;
+        for (double x = start * ratio; x <= until; x *= ratio)
+            orders++;
+
+        Sink sink = plot ? new PlotSink(ratio) : null;
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        try (ResultLog log = ResultLog.create(logFile, start, ratio, orders)) {
+            boolean wheel = engine.equals("wheel");
+            double prevX = start;
+            long prevCount = count(start, wheel);
+            double x = start;
+            for (int order = 1; order <= orders; order++) {
+                x *= ratio;
+                long t0 = System.nanoTime();
+                long count = count(x, wheel);
+                long nanos = System.nanoTime() - t0;
+                // log(1) = 0 and a zero count make the ratio meaningless; flag it as NaN
+                double expected = (prevX > 1 && prevCount > 0) ? NumberTheoryJava.expectedRatio(prevX, x)
+                        : Double.NaN;
+
+                log.append(x, count, expected, nanos);
+                out.println(order + "\t" + (long) x + "\t" + count + "\t" + expected + "\t" + nanos / 1e9);
+                if (sink != null)
+                    sink.accept(order, count, prevCount, expected);
+                prevCount = count;
+                prevX = x;
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    // Wheel engine progress: like NumberTheoryJava.countPrimes, each order only
+    // sieves the n range beyond the previous one
+    private static long wheelLastN = 1; // n=1 -> 2 already accounted for
+    private static long wheelCount = 1;
+
+    // Count of primes n^2+1 <= x, including 2 (n=1), as in NumberTheoryJava.countPrimes
+    static long count(double x, boolean wheel) {
+        if (!wheel)
+            return NumberTheoryJava.countPrimes(x, false);
+        if (x < 2)
+            return 0L;
+        long nMax = (long) Math.floor(Math.sqrt(x - 1));
+        if (nMax > wheelLastN) {
+            wheelCount += NsqPlus1Sieve.countPrimesNsqPlus1(wheelLastN + 1, nMax);
+            wheelLastN = nMax;
+        }
+        return wheelCount;
+    }
+
+    interface Sink {
+        void accept(int order, long count, long prevCount, double expected);
+    }
+
+    // Feeds the live Swing plots; only loaded when --plot is requested
+    static final class PlotSink implements Sink {
+        private final NumberTheoryJava.LivePlot plot;
+        private final NumberTheoryJava.RatioPlot ratioPlot;
+
+        PlotSink(double ratio) {
+            plot = NumberTheoryJava.LivePlot.createAndShow("n^2+1 primes count vs order");
+            ratioPlot = NumberTheoryJava.RatioPlot
+                    .createAndShow("Actual vs Expected ratio per order (ratio: " + ratio + ")");
+        }
+
+        @Override
+        public void accept(int order, long count, long prevCount, double expected) {
+            plot.addPoint(order, count);
+            if (prevCount > 0 && !Double.isNaN(expected))
+                ratioPlot.addPoint(order, (double) count / (double) prevCount, expected);
+        }
+    }
+
+    // Fixed-size binary log, preallocated for all orders and mapped read-write.
+    // Header: int magic, version, records written, capacity, double start, ratio.
+    // Record: double x, long count, double expected ratio, long nanos. The
+    // expected ratio is NaN when the previous order has x <= 1 or count 0. The
+    // record count is bumped after each record, so readers never see a partial one.
+    static final class ResultLog implements AutoCloseable {
+        static final int MAGIC = 0x4E535157; // "NSQW"
+        static final int VERSION = 1;
+        static final int HEADER_BYTES = 32;
+        static final int RECORD_BYTES = 32;
+
+        private final MappedByteBuffer buf;
+        private int written;
+
+        private ResultLog(MappedByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        static ResultLog create(Path file, double start, double ratio, int capacity) throws IOException {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0,
+                        HEADER_BYTES + (long) RECORD_BYTES * capacity);
+                buf.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(capacity).putDouble(start).putDouble(ratio);
+                return new ResultLog(buf);
+            }
+        }
+
+        void append(double x, long count, double expected, long nanos) {
+            buf.putDouble(x).putLong(count).putDouble(expected).putLong(nanos);
+            buf.putInt(8, ++written);
+        }
+
+        @Override
+        public void close() {
+            buf.force();
+        }
+    }
+}